@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2020
+ * KUVEYT TÜRK PARTICIPATION BANK INC.
+ *
+ * Author: Fikri Aydemir
+ *
+ * Project: API Request SignatureGenerator
+ */
+
+package tr.com.kuveytturk.api.signature;
+
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+
+/**
+ * Decodes RSA keys given in PEM format (or as bare Base64 text) in a single pass over the
+ * characters, without building intermediate strings. The Base64 body is decoded directly
+ * into a per-thread scratch buffer.
+ *
+ * For private keys the scratch buffer and the DER array built from it (copied, or wrapped
+ * for PKCS#1) are zeroed once the key object has been created. Copies outside this class
+ * cannot be cleared: PKCS8EncodedKeySpec keeps its own clone of the DER array, and the
+ * input String is immutable.
+ *
+ * Supported blocks are PKCS#8 (BEGIN PRIVATE KEY), PKCS#1 (BEGIN RSA PRIVATE KEY),
+ * X.509 SubjectPublicKeyInfo (BEGIN PUBLIC KEY) and PKCS#1 (BEGIN RSA PUBLIC KEY).
+ * Blocks with other labels, such as a certificate in front of the key, are skipped.
+ * Any mix of spaces, tabs, CR and LF is accepted between the Base64 characters.
+ */
+final class PemKeyDecoder {
+
+    private static final String BEGIN_MARKER = "-----BEGIN ";
+    private static final String END_MARKER = "-----END ";
+    private static final String DASHES = "-----";
+
+    private static final String PKCS8_PRIVATE_LABEL = "PRIVATE KEY";
+    private static final String PKCS1_PRIVATE_LABEL = "RSA PRIVATE KEY";
+    private static final String SPKI_PUBLIC_LABEL = "PUBLIC KEY";
+    private static final String PKCS1_PUBLIC_LABEL = "RSA PUBLIC KEY";
+
+    /**
+     * DER encoding of the AlgorithmIdentifier for rsaEncryption (1.2.840.113549.1.1.1) with NULL parameters
+     */
+    private static final byte[] RSA_ALGORITHM_IDENTIFIER = {
+            0x30, 0x0D, 0x06, 0x09, 0x2A, (byte) 0x86, 0x48, (byte) 0x86,
+            (byte) 0xF7, 0x0D, 0x01, 0x01, 0x01, 0x05, 0x00
+    };
+
+    private static final byte[] PKCS8_VERSION = {0x02, 0x01, 0x00};
+
+    private static final byte INVALID = -1;
+    private static final byte WHITESPACE = -2;
+    private static final byte PADDING = -3;
+
+    /**
+     * Maps ASCII characters to their Base64 value, or to one of the markers above
+     */
+    private static final byte[] BASE64_VALUES = new byte[128];
+
+    /**
+     * Largest scratch buffer kept per thread, larger inputs get a one-off array
+     */
+    static final int MAX_CACHED_SCRATCH_SIZE = 8192;
+
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[2048]);
+
+    static {
+        Arrays.fill(BASE64_VALUES, INVALID);
+        BASE64_VALUES[' '] = WHITESPACE;
+        BASE64_VALUES['\t'] = WHITESPACE;
+        BASE64_VALUES['\r'] = WHITESPACE;
+        BASE64_VALUES['\n'] = WHITESPACE;
+        BASE64_VALUES['='] = PADDING;
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64_VALUES[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    private PemKeyDecoder() {
+    }
+
+    /**
+     * Decodes an RSA private key given as a PKCS#8 or PKCS#1 PEM block. The first block with
+     * one of these labels is used. Text without a PEM header is treated as a Base64 encoded
+     * PKCS#8 structure.
+     *
+     * @param pem The RSA private key as a string object
+     * @return Private key as an instance of java.security.PrivateKey
+     */
+    static PrivateKey decodePrivateKey(String pem) throws NoSuchAlgorithmException, InvalidKeySpecException {
+        int[] range = new int[2];
+        String label = locateBody(pem, range, PKCS8_PRIVATE_LABEL, PKCS1_PRIVATE_LABEL);
+        boolean pkcs1 = PKCS1_PRIVATE_LABEL.equals(label);
+
+        byte[] buffer = scratchBuffer(range[1] - range[0]);
+        byte[] der = null;
+        try {
+            int length = decodeBase64(pem, range[0], range[1], buffer);
+            der = pkcs1 ? wrapPkcs1PrivateKey(buffer, length) : Arrays.copyOf(buffer, length);
+            return KeyFactory.getInstance("RSA").generatePrivate(new PKCS8EncodedKeySpec(der));
+        } finally {
+            Arrays.fill(buffer, (byte) 0);
+            if (der != null) {
+                Arrays.fill(der, (byte) 0);
+            }
+        }
+    }
+
+    /**
+     * Decodes an RSA public key given as an X.509 SubjectPublicKeyInfo or PKCS#1 PEM block.
+     * The first block with one of these labels is used. Text without a PEM header is treated
+     * as a Base64 encoded SubjectPublicKeyInfo structure.
+     *
+     * @param pem The RSA public key as a string object
+     * @return Public key as an instance of java.security.PublicKey
+     */
+    static PublicKey decodePublicKey(String pem) throws NoSuchAlgorithmException, InvalidKeySpecException {
+        int[] range = new int[2];
+        String label = locateBody(pem, range, SPKI_PUBLIC_LABEL, PKCS1_PUBLIC_LABEL);
+        boolean pkcs1 = PKCS1_PUBLIC_LABEL.equals(label);
+
+        byte[] buffer = scratchBuffer(range[1] - range[0]);
+        int length = decodeBase64(pem, range[0], range[1], buffer);
+        byte[] der = pkcs1 ? wrapPkcs1PublicKey(buffer, length) : Arrays.copyOf(buffer, length);
+        return KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(der));
+    }
+
+    /**
+     * Finds the Base64 body of the first PEM block with one of the accepted labels.
+     *
+     * @param pem            The key text
+     * @param range          Receives the start (inclusive) and end (exclusive) index of the body
+     * @param acceptedLabels The labels of the blocks that can be decoded
+     * @return The label of the PEM block (e.g. PRIVATE KEY), or null when the text has no PEM header
+     */
+    private static String locateBody(String pem, int[] range, String... acceptedLabels) throws InvalidKeySpecException {
+        if (pem == null) {
+            throw new InvalidKeySpecException("Key text is missing");
+        }
+        int begin = pem.indexOf(BEGIN_MARKER);
+        if (begin < 0) {
+            range[0] = 0;
+            range[1] = pem.length();
+            return null;
+        }
+
+        while (begin >= 0) {
+            int labelStart = begin + BEGIN_MARKER.length();
+            int labelEnd = pem.indexOf(DASHES, labelStart);
+            if (labelEnd < 0) {
+                throw new InvalidKeySpecException("Malformed PEM header");
+            }
+            int bodyStart = labelEnd + DASHES.length();
+            int end = pem.indexOf(END_MARKER, bodyStart);
+            if (end < 0) {
+                throw new InvalidKeySpecException("PEM footer is missing");
+            }
+
+            String label = matchLabel(pem, labelStart, labelEnd, acceptedLabels);
+            if (label != null) {
+                if (!pem.startsWith(label, end + END_MARKER.length())
+                        || !pem.startsWith(DASHES, end + END_MARKER.length() + label.length())) {
+                    throw new InvalidKeySpecException("PEM footer does not match the header: " + label);
+                }
+                range[0] = bodyStart;
+                range[1] = end;
+                return label;
+            }
+            begin = pem.indexOf(BEGIN_MARKER, end + END_MARKER.length());
+        }
+        throw new InvalidKeySpecException("No PEM block found with any of the labels " + Arrays.toString(acceptedLabels));
+    }
+
+    private static String matchLabel(String pem, int labelStart, int labelEnd, String[] acceptedLabels) {
+        for (String label : acceptedLabels) {
+            if (label.length() == labelEnd - labelStart && pem.startsWith(label, labelStart)) {
+                return label;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Decodes the standard Base64 alphabet from the given character range, skipping whitespace.
+     *
+     * @param src  The characters to decode
+     * @param from The start index (inclusive)
+     * @param to   The end index (exclusive)
+     * @param out  The buffer receiving the decoded bytes, at least (to - from) * 3 / 4 long
+     * @return The number of decoded bytes
+     */
+    static int decodeBase64(String src, int from, int to, byte[] out) throws InvalidKeySpecException {
+        int accumulator = 0;
+        int symbols = 0;
+        int padding = 0;
+        int length = 0;
+
+        for (int i = from; i < to; i++) {
+            char c = src.charAt(i);
+            int value = c < 128 ? BASE64_VALUES[c] : INVALID;
+            if (value >= 0 && padding == 0) {
+                accumulator = (accumulator << 6) | value;
+                if ((++symbols & 3) == 0) {
+                    out[length] = (byte) (accumulator >> 16);
+                    out[length + 1] = (byte) (accumulator >> 8);
+                    out[length + 2] = (byte) accumulator;
+                    length += 3;
+                    accumulator = 0;
+                }
+            } else if (value == PADDING) {
+                padding++;
+            } else if (value != WHITESPACE) {
+                throw new InvalidKeySpecException("Illegal Base64 character at index " + i);
+            }
+        }
+
+        int remainder = symbols & 3;
+        if (remainder == 1 || padding > 2 || (padding > 0 && remainder + padding != 4)) {
+            throw new InvalidKeySpecException("Truncated Base64 key data");
+        }
+        if (remainder == 2) {
+            out[length++] = (byte) (accumulator >> 4);
+        } else if (remainder == 3) {
+            out[length++] = (byte) (accumulator >> 10);
+            out[length++] = (byte) (accumulator >> 2);
+        }
+        if (length == 0) {
+            throw new InvalidKeySpecException("Key data is empty");
+        }
+        return length;
+    }
+
+    /**
+     * Wraps a PKCS#1 RSAPrivateKey structure into a PKCS#8 PrivateKeyInfo structure
+     */
+    private static byte[] wrapPkcs1PrivateKey(byte[] pkcs1, int length) {
+        int octetStringLength = 1 + derLengthSize(length) + length;
+        int contentLength = PKCS8_VERSION.length + RSA_ALGORITHM_IDENTIFIER.length + octetStringLength;
+        byte[] der = new byte[1 + derLengthSize(contentLength) + contentLength];
+
+        int pos = 0;
+        der[pos++] = 0x30;
+        pos = writeDerLength(der, pos, contentLength);
+        System.arraycopy(PKCS8_VERSION, 0, der, pos, PKCS8_VERSION.length);
+        pos += PKCS8_VERSION.length;
+        System.arraycopy(RSA_ALGORITHM_IDENTIFIER, 0, der, pos, RSA_ALGORITHM_IDENTIFIER.length);
+        pos += RSA_ALGORITHM_IDENTIFIER.length;
+        der[pos++] = 0x04;
+        pos = writeDerLength(der, pos, length);
+        System.arraycopy(pkcs1, 0, der, pos, length);
+        return der;
+    }
+
+    /**
+     * Wraps a PKCS#1 RSAPublicKey structure into an X.509 SubjectPublicKeyInfo structure
+     */
+    private static byte[] wrapPkcs1PublicKey(byte[] pkcs1, int length) {
+        int bitStringLength = 1 + derLengthSize(length + 1) + 1 + length;
+        int contentLength = RSA_ALGORITHM_IDENTIFIER.length + bitStringLength;
+        byte[] der = new byte[1 + derLengthSize(contentLength) + contentLength];
+
+        int pos = 0;
+        der[pos++] = 0x30;
+        pos = writeDerLength(der, pos, contentLength);
+        System.arraycopy(RSA_ALGORITHM_IDENTIFIER, 0, der, pos, RSA_ALGORITHM_IDENTIFIER.length);
+        pos += RSA_ALGORITHM_IDENTIFIER.length;
+        der[pos++] = 0x03;
+        pos = writeDerLength(der, pos, length + 1);
+        der[pos++] = 0x00;
+        System.arraycopy(pkcs1, 0, der, pos, length);
+        return der;
+    }
+
+    private static int derLengthSize(int length) {
+        if (length < 0x80) {
+            return 1;
+        } else if (length < 0x100) {
+            return 2;
+        } else if (length < 0x10000) {
+            return 3;
+        }
+        return 4;
+    }
+
+    private static int writeDerLength(byte[] der, int pos, int length) {
+        int size = derLengthSize(length);
+        if (size == 1) {
+            der[pos++] = (byte) length;
+            return pos;
+        }
+        der[pos++] = (byte) (0x80 | (size - 1));
+        for (int shift = (size - 2) * 8; shift >= 0; shift -= 8) {
+            der[pos++] = (byte) (length >> shift);
+        }
+        return pos;
+    }
+
+    /**
+     * Returns a buffer large enough for the Base64 data in the given number of characters.
+     * Buffers up to MAX_CACHED_SCRATCH_SIZE are reused by the calling thread.
+     */
+    static byte[] scratchBuffer(int charCount) {
+        int required = charCount / 4 * 3 + 3;
+        if (required > MAX_CACHED_SCRATCH_SIZE) {
+            return new byte[required];
+        }
+        byte[] buffer = SCRATCH.get();
+        if (buffer.length < required) {
+            buffer = new byte[required];
+            SCRATCH.set(buffer);
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,469 @@
+/*
+ * Copyright (c) 2020
+ * KUVEYT TÜRK PARTICIPATION BANK INC.
+ *
+ * Author: Fikri Aydemir
+ *
+ * Project: API Request SignatureGenerator
+ */
+
+package tr.com.kuveytturk.api.signature;
+
+import java.security.PrivateKey;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Signs requests on behalf of several tenants (client applications) sharing the same
+ * worker threads. Each tenant has its own access token, a cached private key, a bounded
+ * queue and a rate limit. Queued requests are served in weighted round robin order so
+ * that a tenant submitting large bulk jobs cannot starve the others.
+ */
+public final class TenantSigningScheduler implements AutoCloseable {
+
+    private final Object lock = new Object();
+    private final Map<String, Tenant> tenants = new HashMap<>();
+    private final List<Tenant> rotation = new ArrayList<>();
+    private final Thread[] workers;
+    private int cursor;
+    private boolean closed;
+
+    /**
+     * Constructor
+     *
+     * @param workerCount The number of threads that perform the signing operations
+     */
+    public TenantSigningScheduler(int workerCount) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("workerCount must be positive: " + workerCount);
+        }
+        workers = new Thread[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Thread(this::runWorker, "tenant-signing-worker-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Constructor for tests. No worker threads are started; queued requests are only
+     * served by calling {@link #runNext()}.
+     */
+    TenantSigningScheduler() {
+        workers = new Thread[0];
+    }
+
+    /**
+     * Registers a tenant. The private key is parsed once here and reused for every request
+     * of the tenant.
+     *
+     * @param tenantId              The unique identifier of the tenant
+     * @param accessToken           The access token of the tenant's application
+     * @param privateKeyAsString    The RSA private key of the tenant as a string object
+     * @param weight                The number of consecutive requests the tenant may have served per turn
+     * @param maxPendingRequests    The maximum number of queued requests of the tenant
+     * @param maxRequestsPerSecond  The sustained submission rate allowed for the tenant
+     */
+    public void registerTenant(String tenantId,
+                               String accessToken,
+                               String privateKeyAsString,
+                               int weight,
+                               int maxPendingRequests,
+                               double maxRequestsPerSecond) throws SignatureGenerationException {
+        if (tenantId == null) {
+            throw new SignatureGenerationException("tenantId must not be null");
+        }
+        if (accessToken == null) {
+            throw new SignatureGenerationException("accessToken must not be null for tenant " + tenantId);
+        }
+        if (weight < 1) {
+            throw new SignatureGenerationException("weight must be positive for tenant " + tenantId + ": " + weight);
+        }
+        if (maxPendingRequests < 1) {
+            throw new SignatureGenerationException("maxPendingRequests must be positive for tenant "
+                    + tenantId + ": " + maxPendingRequests);
+        }
+        if (!Double.isFinite(maxRequestsPerSecond) || maxRequestsPerSecond <= 0) {
+            throw new SignatureGenerationException("maxRequestsPerSecond must be a positive finite number for tenant "
+                    + tenantId + ": " + maxRequestsPerSecond);
+        }
+
+        PrivateKey privateKey;
+        try {
+            privateKey = SignatureGeneratorUtility.buildPrivateKeyFromString(privateKeyAsString);
+        } catch (Exception e) {
+            String msg = e.getLocalizedMessage();
+            throw new SignatureGenerationException(msg, e);
+        }
+
+        Tenant tenant = new Tenant(tenantId, accessToken, privateKey, weight,
+                maxPendingRequests, maxRequestsPerSecond);
+        synchronized (lock) {
+            if (closed) {
+                throw new SignatureGenerationException("Scheduler is closed");
+            }
+            if (tenants.containsKey(tenantId)) {
+                throw new SignatureGenerationException("Tenant is already registered: " + tenantId);
+            }
+            tenants.put(tenantId, tenant);
+            rotation.add(tenant);
+        }
+    }
+
+    /**
+     * Removes a tenant. Requests of the tenant that are still queued fail with
+     * a SignatureGenerationException.
+     *
+     * @param tenantId The unique identifier of the tenant
+     */
+    public void unregisterTenant(String tenantId) {
+        Tenant tenant;
+        synchronized (lock) {
+            tenant = tenants.remove(tenantId);
+            if (tenant == null) {
+                return;
+            }
+            int index = rotation.indexOf(tenant);
+            rotation.remove(index);
+            if (index < cursor) {
+                cursor--;
+            }
+            if (cursor >= rotation.size()) {
+                cursor = 0;
+            }
+        }
+        tenant.failPending("Tenant is unregistered: " + tenantId);
+    }
+
+    /**
+     * Queues the signature generation of a GET request for the given tenant
+     *
+     * @param tenantId    The unique identifier of the tenant
+     * @param queryParams The query parameter names and values, may be null
+     * @return The base64 encoded signature by using SHA256/RSA once it is generated
+     */
+    public CompletableFuture<String> submitGetRequest(String tenantId,
+                                                      List<QueryParameterBean> queryParams) throws SignatureGenerationException {
+        Tenant tenant = getTenant(tenantId);
+        String input = tenant.accessToken.trim() + SignatureGeneratorUtility.getQueryParamsString(queryParams);
+        return enqueue(tenant, input);
+    }
+
+    /**
+     * Queues the signature generation of a POST request for the given tenant
+     *
+     * @param tenantId The unique identifier of the tenant
+     * @param jsonBody The content of the request body in JSON format as a String object.
+     * @return The base64 encoded signature by using SHA256/RSA once it is generated
+     */
+    public CompletableFuture<String> submitPostRequest(String tenantId,
+                                                       String jsonBody) throws SignatureGenerationException {
+        Tenant tenant = getTenant(tenantId);
+        String input = tenant.accessToken + jsonBody;
+        return enqueue(tenant, input);
+    }
+
+    /**
+     * Returns a snapshot of the counters of the given tenant
+     *
+     * @param tenantId The unique identifier of the tenant
+     * @return The statistics of the tenant
+     */
+    public TenantStatistics getStatistics(String tenantId) throws SignatureGenerationException {
+        Tenant tenant = getTenant(tenantId);
+        synchronized (lock) {
+            return new TenantStatistics(tenant.submitted, tenant.rejected, tenant.completed,
+                    tenant.failed, tenant.queue.size(), tenant.queueWaitNanos, tenant.signingNanos);
+        }
+    }
+
+    /**
+     * Stops the worker threads. Queued requests fail with a SignatureGenerationException.
+     */
+    @Override
+    public void close() {
+        List<Tenant> remaining;
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            remaining = new ArrayList<>(rotation);
+            lock.notifyAll();
+        }
+        for (Tenant tenant : remaining) {
+            tenant.failPending("Scheduler is closed");
+        }
+    }
+
+    private Tenant getTenant(String tenantId) throws SignatureGenerationException {
+        synchronized (lock) {
+            Tenant tenant = tenants.get(tenantId);
+            if (tenant == null) {
+                throw new SignatureGenerationException("Unknown tenant: " + tenantId);
+            }
+            return tenant;
+        }
+    }
+
+    private CompletableFuture<String> enqueue(Tenant tenant, String input) throws SignatureGenerationException {
+        SigningTask task;
+        synchronized (lock) {
+            if (closed || tenants.get(tenant.id) != tenant) {
+                throw new SignatureGenerationException("Tenant is not accepting requests: " + tenant.id);
+            }
+            if (tenant.queue.size() >= tenant.maxPendingRequests) {
+                tenant.rejected++;
+                throw new SignatureGenerationException("Pending request quota exceeded for tenant " + tenant.id);
+            }
+            long nowNanos = System.nanoTime();
+            if (!tenant.tryAcquirePermit(nowNanos)) {
+                tenant.rejected++;
+                throw new SignatureGenerationException("Rate limit exceeded for tenant " + tenant.id);
+            }
+            task = new SigningTask(input, nowNanos);
+            tenant.submitted++;
+            tenant.queue.addLast(task);
+            lock.notify();
+        }
+        return task.result;
+    }
+
+    private void runWorker() {
+        while (true) {
+            Tenant tenant;
+            SigningTask task;
+            synchronized (lock) {
+                while ((tenant = nextTenant()) == null) {
+                    if (closed) {
+                        return;
+                    }
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        // Only close() stops the workers, otherwise queued requests would never complete
+                    }
+                }
+                task = tenant.queue.pollFirst();
+            }
+            sign(tenant, task);
+        }
+    }
+
+    /**
+     * Serves the next queued request on the calling thread.
+     *
+     * @return false if no request was queued
+     */
+    boolean runNext() {
+        Tenant tenant;
+        SigningTask task;
+        synchronized (lock) {
+            tenant = nextTenant();
+            if (tenant == null) {
+                return false;
+            }
+            task = tenant.queue.pollFirst();
+        }
+        sign(tenant, task);
+        return true;
+    }
+
+    private void sign(Tenant tenant, SigningTask task) {
+        long startNanos = System.nanoTime();
+        String signature = null;
+        Exception failure = null;
+        try {
+            signature = SignatureGeneratorUtility.signSHA256RSA(task.input, tenant.privateKey);
+        } catch (Exception e) {
+            failure = e;
+        }
+        long endNanos = System.nanoTime();
+
+        synchronized (lock) {
+            tenant.queueWaitNanos += startNanos - task.enqueuedNanos;
+            tenant.signingNanos += endNanos - startNanos;
+            if (failure == null) {
+                tenant.completed++;
+            } else {
+                tenant.failed++;
+            }
+        }
+
+        if (failure == null) {
+            task.result.complete(signature);
+        } else {
+            String msg = failure.getLocalizedMessage();
+            task.result.completeExceptionally(new SignatureGenerationException(msg, failure));
+        }
+    }
+
+    /**
+     * Picks the tenant whose request is served next. The tenant at the cursor keeps its turn
+     * until it has used up its weight or has nothing queued, then the cursor moves on.
+     * Must be called while holding the lock.
+     */
+    private Tenant nextTenant() {
+        if (closed) {
+            return null;
+        }
+        int size = rotation.size();
+        for (int i = 0; i < size; i++) {
+            Tenant tenant = rotation.get(cursor);
+            if (!tenant.queue.isEmpty()) {
+                if (tenant.credits == 0) {
+                    tenant.credits = tenant.weight;
+                }
+                tenant.credits--;
+                if (tenant.credits == 0 || tenant.queue.size() == 1) {
+                    tenant.credits = 0;
+                    cursor = (cursor + 1) % size;
+                }
+                return tenant;
+            }
+            tenant.credits = 0;
+            cursor = (cursor + 1) % size;
+        }
+        return null;
+    }
+
+    private static final class SigningTask {
+        private final String input;
+        private final long enqueuedNanos;
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+
+        private SigningTask(String input, long enqueuedNanos) {
+            this.input = input;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+
+    private final class Tenant {
+        private final String id;
+        private final String accessToken;
+        private final PrivateKey privateKey;
+        private final int weight;
+        private final int maxPendingRequests;
+        private final double maxRequestsPerSecond;
+        private final ArrayDeque<SigningTask> queue = new ArrayDeque<>();
+
+        private int credits;
+        private double permits;
+        private long lastRefillNanos = System.nanoTime();
+
+        private long submitted;
+        private long rejected;
+        private long completed;
+        private long failed;
+        private long queueWaitNanos;
+        private long signingNanos;
+
+        private Tenant(String id, String accessToken, PrivateKey privateKey, int weight,
+                       int maxPendingRequests, double maxRequestsPerSecond) {
+            this.id = id;
+            this.accessToken = accessToken;
+            this.privateKey = privateKey;
+            this.weight = weight;
+            this.maxPendingRequests = maxPendingRequests;
+            this.maxRequestsPerSecond = maxRequestsPerSecond;
+            this.permits = Math.max(1.0, maxRequestsPerSecond);
+        }
+
+        /**
+         * Token bucket holding at most one second worth of permits. Must be called while
+         * holding the lock.
+         */
+        private boolean tryAcquirePermit(long nowNanos) {
+            double burst = Math.max(1.0, maxRequestsPerSecond);
+            permits = Math.min(burst, permits + (nowNanos - lastRefillNanos) * maxRequestsPerSecond / 1e9);
+            lastRefillNanos = nowNanos;
+            if (permits < 1.0) {
+                return false;
+            }
+            permits -= 1.0;
+            return true;
+        }
+
+        private void failPending(String message) {
+            List<SigningTask> pending;
+            synchronized (lock) {
+                pending = new ArrayList<>(queue);
+                failed += queue.size();
+                queue.clear();
+            }
+            for (SigningTask task : pending) {
+                task.result.completeExceptionally(new SignatureGenerationException(message));
+            }
+        }
+    }
+
+    /**
+     * Snapshot of the counters kept for a tenant
+     */
+    public static final class TenantStatistics {
+        private final long submittedCount;
+        private final long rejectedCount;
+        private final long completedCount;
+        private final long failedCount;
+        private final long pendingCount;
+        private final long totalQueueWaitNanos;
+        private final long totalSigningNanos;
+
+        private TenantStatistics(long submittedCount, long rejectedCount, long completedCount,
+                                 long failedCount, long pendingCount,
+                                 long totalQueueWaitNanos, long totalSigningNanos) {
+            this.submittedCount = submittedCount;
+            this.rejectedCount = rejectedCount;
+            this.completedCount = completedCount;
+            this.failedCount = failedCount;
+            this.pendingCount = pendingCount;
+            this.totalQueueWaitNanos = totalQueueWaitNanos;
+            this.totalSigningNanos = totalSigningNanos;
+        }
+
+        public long getSubmittedCount() {
+            return submittedCount;
+        }
+
+        public long getRejectedCount() {
+            return rejectedCount;
+        }
+
+        public long getCompletedCount() {
+            return completedCount;
+        }
+
+        public long getFailedCount() {
+            return failedCount;
+        }
+
+        public long getPendingCount() {
+            return pendingCount;
+        }
+
+        public long getTotalQueueWaitNanos() {
+            return totalQueueWaitNanos;
+        }
+
+        public long getTotalSigningNanos() {
+            return totalSigningNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "TenantStatistics{" +
+                    " submitted=" + submittedCount +
+                    ", rejected=" + rejectedCount +
+                    ", completed=" + completedCount +
+                    ", failed=" + failedCount +
+                    ", pending=" + pendingCount +
+                    ", queueWaitNanos=" + totalQueueWaitNanos +
+                    ", signingNanos=" + totalSigningNanos +
+                    '}';
+        }
+    }
+}
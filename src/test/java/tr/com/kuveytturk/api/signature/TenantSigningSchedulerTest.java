@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2020
+ * KUVEYT TÜRK PARTICIPATION BANK INC.
+ *
+ * Author: Fikri Aydemir
+ *
+ * Project: API Request SignatureGenerator
+ */
+
+package tr.com.kuveytturk.api.signature;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TenantSigningSchedulerTest {
+
+    private static final double UNLIMITED_RATE = 1_000_000;
+
+    private static String privateKey;
+
+    @BeforeAll
+    static void createKey() {
+        privateKey = TestKeys.pkcs8Pem(TestKeys.rsa2048());
+    }
+
+    @Test
+    void servesTenantsInWeightedRoundRobinOrder() throws Exception {
+        TenantSigningScheduler scheduler = new TenantSigningScheduler();
+        scheduler.registerTenant("A", "tokenA", privateKey, 2, 10, UNLIMITED_RATE);
+        scheduler.registerTenant("B", "tokenB", privateKey, 1, 10, UNLIMITED_RATE);
+
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 4; i++) {
+            scheduler.submitPostRequest("A", "{}").thenRun(() -> order.add("A"));
+        }
+        for (int i = 0; i < 2; i++) {
+            scheduler.submitPostRequest("B", "{}").thenRun(() -> order.add("B"));
+        }
+
+        while (scheduler.runNext()) {
+        }
+        assertEquals(List.of("A", "A", "B", "A", "A", "B"), order);
+    }
+
+    @Test
+    void skipsTenantsWithoutQueuedRequests() throws Exception {
+        TenantSigningScheduler scheduler = new TenantSigningScheduler();
+        scheduler.registerTenant("A", "tokenA", privateKey, 1, 10, UNLIMITED_RATE);
+        scheduler.registerTenant("B", "tokenB", privateKey, 1, 10, UNLIMITED_RATE);
+        scheduler.registerTenant("C", "tokenC", privateKey, 1, 10, UNLIMITED_RATE);
+
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        scheduler.submitPostRequest("C", "{}").thenRun(() -> order.add("C"));
+        scheduler.submitPostRequest("A", "{}").thenRun(() -> order.add("A"));
+
+        while (scheduler.runNext()) {
+        }
+        assertEquals(List.of("A", "C"), order);
+        assertFalse(scheduler.runNext());
+    }
+
+    @Test
+    void correctsCursorWhenTenantBeforeItIsRemoved() throws Exception {
+        TenantSigningScheduler scheduler = new TenantSigningScheduler();
+        scheduler.registerTenant("A", "tokenA", privateKey, 1, 10, UNLIMITED_RATE);
+        scheduler.registerTenant("B", "tokenB", privateKey, 1, 10, UNLIMITED_RATE);
+        scheduler.registerTenant("C", "tokenC", privateKey, 1, 10, UNLIMITED_RATE);
+
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        scheduler.submitPostRequest("A", "{}").thenRun(() -> order.add("A"));
+        CompletableFuture<String> orphan = scheduler.submitPostRequest("A", "{}");
+        scheduler.submitPostRequest("C", "{}").thenRun(() -> order.add("C"));
+        scheduler.submitPostRequest("B", "{}").thenRun(() -> order.add("B"));
+
+        // Serving A moves the cursor to B; removing A must keep it on B rather than C
+        assertTrue(scheduler.runNext());
+        scheduler.unregisterTenant("A");
+        while (scheduler.runNext()) {
+        }
+
+        assertEquals(List.of("A", "B", "C"), order);
+        assertFailsWithSignatureGenerationException(orphan);
+    }
+
+    @Test
+    void wrapsCursorWhenLastTenantIsRemoved() throws Exception {
+        TenantSigningScheduler scheduler = new TenantSigningScheduler();
+        scheduler.registerTenant("A", "tokenA", privateKey, 1, 10, UNLIMITED_RATE);
+        scheduler.registerTenant("B", "tokenB", privateKey, 1, 10, UNLIMITED_RATE);
+
+        scheduler.submitPostRequest("A", "{}");
+        scheduler.submitPostRequest("B", "{}");
+        assertTrue(scheduler.runNext());
+        scheduler.unregisterTenant("B");
+
+        CompletableFuture<String> result = scheduler.submitPostRequest("A", "{}");
+        assertTrue(scheduler.runNext());
+        assertTrue(result.isDone());
+        assertFalse(scheduler.runNext());
+    }
+
+    @Test
+    void rejectsRequestsAbovePendingQuota() throws Exception {
+        TenantSigningScheduler scheduler = new TenantSigningScheduler();
+        scheduler.registerTenant("A", "tokenA", privateKey, 1, 2, UNLIMITED_RATE);
+
+        scheduler.submitPostRequest("A", "{}");
+        scheduler.submitPostRequest("A", "{}");
+        SignatureGenerationException e = assertThrows(SignatureGenerationException.class,
+                () -> scheduler.submitPostRequest("A", "{}"));
+        assertTrue(e.getMessage().contains("Pending request quota"));
+
+        TenantSigningScheduler.TenantStatistics statistics = scheduler.getStatistics("A");
+        assertEquals(2, statistics.getSubmittedCount());
+        assertEquals(1, statistics.getRejectedCount());
+        assertEquals(2, statistics.getPendingCount());
+
+        scheduler.runNext();
+        scheduler.submitPostRequest("A", "{}");
+        assertEquals(3, scheduler.getStatistics("A").getSubmittedCount());
+    }
+
+    @Test
+    void rejectsRequestsAboveRateLimit() throws Exception {
+        TenantSigningScheduler scheduler = new TenantSigningScheduler();
+        scheduler.registerTenant("A", "tokenA", privateKey, 1, 100, 2);
+
+        scheduler.submitPostRequest("A", "{}");
+        scheduler.submitPostRequest("A", "{}");
+        SignatureGenerationException e = assertThrows(SignatureGenerationException.class,
+                () -> scheduler.submitPostRequest("A", "{}"));
+        assertTrue(e.getMessage().contains("Rate limit"));
+        assertEquals(1, scheduler.getStatistics("A").getRejectedCount());
+    }
+
+    @Test
+    void rejectsInvalidTenantSettings() {
+        TenantSigningScheduler scheduler = new TenantSigningScheduler();
+
+        assertRejected(scheduler, null, "token", 1, 1, 1, "tenantId");
+        assertRejected(scheduler, "A", null, 1, 1, 1, "accessToken");
+        assertRejected(scheduler, "A", "token", 0, 1, 1, "weight");
+        assertRejected(scheduler, "A", "token", 1, 0, 1, "maxPendingRequests");
+        assertRejected(scheduler, "A", "token", 1, 1, 0, "maxRequestsPerSecond");
+        assertRejected(scheduler, "A", "token", 1, 1, Double.NaN, "maxRequestsPerSecond");
+        assertRejected(scheduler, "A", "token", 1, 1, Double.POSITIVE_INFINITY, "maxRequestsPerSecond");
+    }
+
+    @Test
+    void rejectsDuplicateAndUnknownTenants() throws Exception {
+        TenantSigningScheduler scheduler = new TenantSigningScheduler();
+        scheduler.registerTenant("A", "tokenA", privateKey, 1, 1, 1);
+
+        assertThrows(SignatureGenerationException.class,
+                () -> scheduler.registerTenant("A", "tokenA", privateKey, 1, 1, 1));
+        assertThrows(SignatureGenerationException.class,
+                () -> scheduler.submitPostRequest("B", "{}"));
+        assertThrows(SignatureGenerationException.class,
+                () -> scheduler.getStatistics("B"));
+    }
+
+    @Test
+    void closeFailsPendingRequests() throws Exception {
+        TenantSigningScheduler scheduler = new TenantSigningScheduler();
+        scheduler.registerTenant("A", "tokenA", privateKey, 1, 10, UNLIMITED_RATE);
+        CompletableFuture<String> pending = scheduler.submitPostRequest("A", "{}");
+
+        scheduler.close();
+
+        assertFailsWithSignatureGenerationException(pending);
+        TenantSigningScheduler.TenantStatistics statistics = scheduler.getStatistics("A");
+        assertEquals(1, statistics.getFailedCount());
+        assertEquals(0, statistics.getPendingCount());
+        assertThrows(SignatureGenerationException.class,
+                () -> scheduler.submitPostRequest("A", "{}"));
+    }
+
+    @Test
+    void producesSameSignaturesAsUtility() throws Exception {
+        List<QueryParameterBean> queryParams = List.of(new QueryParameterBean("p", "1"));
+        try (TenantSigningScheduler scheduler = new TenantSigningScheduler(2)) {
+            scheduler.registerTenant("A", "tokenA", privateKey, 1, 10, UNLIMITED_RATE);
+
+            String post = scheduler.submitPostRequest("A", "{\"a\":1}").get(10, TimeUnit.SECONDS);
+            String get = scheduler.submitGetRequest("A", queryParams).get(10, TimeUnit.SECONDS);
+
+            assertEquals(SignatureGeneratorUtility.generateSignatureForPostRequest("tokenA", privateKey, "{\"a\":1}"), post);
+            assertEquals(SignatureGeneratorUtility.generateSignatureForGetRequest("tokenA", privateKey, queryParams), get);
+
+            TenantSigningScheduler.TenantStatistics statistics = scheduler.getStatistics("A");
+            assertEquals(2, statistics.getSubmittedCount());
+            assertEquals(2, statistics.getCompletedCount());
+            assertEquals(0, statistics.getFailedCount());
+            assertTrue(statistics.getTotalSigningNanos() > 0);
+        }
+    }
+
+    @Test
+    void workersKeepServingAfterInterrupt() throws Exception {
+        try (TenantSigningScheduler scheduler = new TenantSigningScheduler(1)) {
+            scheduler.registerTenant("A", "tokenA", privateKey, 1, 10, UNLIMITED_RATE);
+            scheduler.submitPostRequest("A", "{}").get(10, TimeUnit.SECONDS);
+
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.getName().startsWith("tenant-signing-worker-")) {
+                    thread.interrupt();
+                }
+            }
+
+            assertEquals(SignatureGeneratorUtility.generateSignatureForPostRequest("tokenA", privateKey, "{}"),
+                    scheduler.submitPostRequest("A", "{}").get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    private static void assertRejected(TenantSigningScheduler scheduler, String tenantId, String accessToken,
+                                       int weight, int maxPendingRequests, double maxRequestsPerSecond,
+                                       String parameterName) {
+        SignatureGenerationException e = assertThrows(SignatureGenerationException.class,
+                () -> scheduler.registerTenant(tenantId, accessToken, privateKey,
+                        weight, maxPendingRequests, maxRequestsPerSecond));
+        assertTrue(e.getMessage().contains(parameterName), e.getMessage());
+    }
+
+    private static void assertFailsWithSignatureGenerationException(CompletableFuture<String> future) {
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(SignatureGenerationException.class, e.getCause());
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2020
+ * KUVEYT TÜRK PARTICIPATION BANK INC.
+ *
+ * Author: Fikri Aydemir
+ *
+ * Project: API Request SignatureGenerator
+ */
+
+package tr.com.kuveytturk.api.signature;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * RSA key pairs and PEM helpers shared by the tests
+ */
+final class TestKeys {
+
+    private static KeyPair rsa2048;
+
+    private TestKeys() {
+    }
+
+    static synchronized KeyPair rsa2048() {
+        if (rsa2048 == null) {
+            rsa2048 = generate(2048);
+        }
+        return rsa2048;
+    }
+
+    static KeyPair generate(int bits) {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(bits);
+            return generator.generateKeyPair();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Encodes the DER bytes as a PEM block with 64 character lines
+     */
+    static String pem(String label, byte[] der, String lineSeparator) {
+        String body = Base64.getMimeEncoder(64, lineSeparator.getBytes(StandardCharsets.US_ASCII))
+                .encodeToString(der);
+        return "-----BEGIN " + label + "-----" + lineSeparator
+                + body + lineSeparator
+                + "-----END " + label + "-----" + lineSeparator;
+    }
+
+    static String pkcs8Pem(KeyPair keyPair) {
+        return pem("PRIVATE KEY", keyPair.getPrivate().getEncoded(), "\n");
+    }
+
+    /**
+     * Extracts the PKCS#1 RSAPrivateKey from the OCTET STRING of the PKCS#8 encoding
+     */
+    static byte[] pkcs1PrivateKey(KeyPair keyPair) {
+        return childContents(keyPair.getPrivate().getEncoded(), 2);
+    }
+
+    /**
+     * Extracts the PKCS#1 RSAPublicKey from the BIT STRING of the X.509 encoding
+     */
+    static byte[] pkcs1PublicKey(KeyPair keyPair) {
+        byte[] bitString = childContents(keyPair.getPublic().getEncoded(), 1);
+        return Arrays.copyOfRange(bitString, 1, bitString.length);
+    }
+
+    /**
+     * Returns the contents of the given child of the outermost DER SEQUENCE
+     */
+    private static byte[] childContents(byte[] der, int childIndex) {
+        int[] outer = readHeader(der, 0);
+        int pos = outer[0];
+        for (int i = 0; i < childIndex; i++) {
+            int[] child = readHeader(der, pos);
+            pos = child[0] + child[1];
+        }
+        int[] child = readHeader(der, pos);
+        return Arrays.copyOfRange(der, child[0], child[0] + child[1]);
+    }
+
+    /**
+     * Reads the tag and length at the given offset
+     *
+     * @return The offset of the contents and their length
+     */
+    private static int[] readHeader(byte[] der, int offset) {
+        int pos = offset + 1;
+        int length = der[pos++] & 0xFF;
+        if (length >= 0x80) {
+            int lengthBytes = length & 0x7F;
+            length = 0;
+            for (int i = 0; i < lengthBytes; i++) {
+                length = (length << 8) | (der[pos++] & 0xFF);
+            }
+        }
+        return new int[]{pos, length};
+    }
+}